@@ -2,6 +2,8 @@ package base_echo;
 
 import java.net.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class UDPClient extends Thread {
 	// Here are object properties
@@ -10,20 +12,13 @@ public class UDPClient extends Thread {
     private byte[] inbuf = new byte[1000];
     private byte[] outbuf;
     private DatagramPacket dp = new DatagramPacket(inbuf, inbuf.length);
-	
+
+    // Ping probe: 8-byte sequence number + 8-byte client send nanoTime, padded to the probe size
+    static final int PROBE_HEADER = 16;
+    static final int PING_TIMEOUT_MS = 1000;
+
     public UDPClient() {
-        try {
-            mysocket = new DatagramSocket();
-            hostAddress = InetAddress.getByName("localhost");
-        } catch(UnknownHostException e) {
-            System.err.println("Unable to locate this server!");
-            System.exit(1);
-        } catch(SocketException e) {
-            System.err.println("Unable to open the socket");
-            e.printStackTrace();
-            System.exit(1);
-        }
-        System.out.println("The UDP client is up");
+        open();
         String outMessage = "Hello from the client!";
         try {
             // Here we connect wioth the server
@@ -34,7 +29,7 @@ public class UDPClient extends Thread {
             mysocket.send(new DatagramPacket(outbuf, outbuf.length, hostAddress, base_echo.UDPServer.INPORT));
             mysocket.receive(dp);
             String message = new String(dp.getData(), 0, dp.getLength());
-            String rcvd = "Received from the address: " + dp.getAddress() + ", port: " + dp.getPort() + ": " + message;        		
+            String rcvd = "Received from the address: " + dp.getAddress() + ", port: " + dp.getPort() + ": " + message;
             System.out.println(rcvd);
             mysocket.disconnect();
             mysocket.close();
@@ -43,10 +38,112 @@ public class UDPClient extends Thread {
             System.exit(1);
         }
     }
-   
+
+    // Ping mode - sends N probes over a connected socket and reports RTT statistics
+    public UDPClient(int probes, int size, int intervalMs) {
+        open();
+        size = Math.max(PROBE_HEADER, Math.min(size, inbuf.length - base_echo.UDPServer.STAMP_BYTES));
+        long[] rtt = new long[probes];
+        long[] server = new long[probes];
+        int received = 0, stamped = 0;
+        try {
+            // Connected socket: the kernel filters foreign senders and the probe packet needs no address
+            mysocket.connect(hostAddress, base_echo.UDPServer.INPORT);
+            mysocket.setSoTimeout(PING_TIMEOUT_MS);
+            outbuf = new byte[size];
+            ByteBuffer out = ByteBuffer.wrap(outbuf);
+            ByteBuffer in = ByteBuffer.wrap(inbuf);
+            DatagramPacket probe = new DatagramPacket(outbuf, outbuf.length);
+            System.out.println("PING " + mysocket.getRemoteSocketAddress() + ": " + probes + " probes of " + size + " bytes");
+
+            for (long seq = 0; seq < probes; seq++) {
+                long t0 = System.nanoTime();
+                out.putLong(0, seq);
+                out.putLong(8, t0);
+                mysocket.send(probe);
+                try {
+                    // Skip late replies to earlier (timed out) probes
+                    do {
+                        dp.setLength(inbuf.length);
+                        mysocket.receive(dp);
+                    } while (dp.getLength() < PROBE_HEADER || in.getLong(0) != seq);
+                    long t1 = System.nanoTime();
+                    rtt[received] = t1 - t0;
+                    // Stamp mode reply: probe followed by server receive and send nanotimes
+                    if (dp.getLength() == size + base_echo.UDPServer.STAMP_BYTES) {
+                        server[stamped++] = in.getLong(size + 8) - in.getLong(size);
+                    }
+                    received++;
+                } catch(SocketTimeoutException | PortUnreachableException e) {
+                    // Connected sockets also surface ICMP port unreachable when the server is down
+                    System.out.println("probe " + seq + " lost");
+                }
+                if (intervalMs > 0) Thread.sleep(intervalMs);
+            }
+            mysocket.disconnect();
+            mysocket.close();
+        } catch(IOException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        report(probes, Arrays.copyOf(rtt, received), Arrays.copyOf(server, stamped));
+    }
+
+    // Print min/avg/p99/max and jitter (mean difference between consecutive RTTs), in microseconds
+    private static void report(int probes, long[] rtt, long[] server) {
+        System.out.printf("%d sent, %d received, %.1f%% loss%n", probes, rtt.length,
+                100.0 * (probes - rtt.length) / probes);
+        if (rtt.length == 0) return;
+
+        long sum = 0, jitter = 0;
+        for (int i = 0; i < rtt.length; i++) {
+            sum += rtt[i];
+            if (i > 0) jitter += Math.abs(rtt[i] - rtt[i - 1]);
+        }
+        long[] sorted = rtt.clone();
+        Arrays.sort(sorted);
+        int p99 = (int) Math.ceil(0.99 * sorted.length) - 1;
+        System.out.printf("rtt min/avg/p99/max = %.1f/%.1f/%.1f/%.1f us, jitter %.1f us%n",
+                sorted[0] / 1e3, sum / 1e3 / rtt.length, sorted[p99] / 1e3, sorted[sorted.length - 1] / 1e3,
+                rtt.length > 1 ? jitter / 1e3 / (rtt.length - 1) : 0.0);
+
+        // Only available when the server runs in stamp mode
+        if (server.length == rtt.length) {
+            long serverSum = 0;
+            for (long s : server) serverSum += s;
+            System.out.printf("avg split: network %.1f us, server %.1f us%n",
+                    (sum - serverSum) / 1e3 / rtt.length, serverSum / 1e3 / rtt.length);
+        }
+    }
+
+    private void open() {
+        try {
+            mysocket = new DatagramSocket();
+            hostAddress = InetAddress.getByName("localhost");
+        } catch(UnknownHostException e) {
+            System.err.println("Unable to locate this server!");
+            System.exit(1);
+        } catch(SocketException e) {
+            System.err.println("Unable to open the socket");
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("The UDP client is up");
+    }
+
     public static void main(String[] args) {
 			// Here we start the client - object constructor
-            new UDPClient();
+            if (args.length > 0 && args[0].equals("ping")) {
+                int probes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+                if (probes < 1) {
+                    System.err.println("Usage: java base_echo.UDPClient ping [count>=1] [size] [intervalMs]");
+                    System.exit(1);
+                }
+                new UDPClient(probes,
+                        args.length > 2 ? Integer.parseInt(args[2]) : 64,
+                        args.length > 3 ? Integer.parseInt(args[3]) : 10);
+            } else {
+                new UDPClient();
+            }
     }
 }
-
@@ -2,29 +2,32 @@ package base_echo;
 
 import java.net.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 public class UDPServer {
-      
+
     static final int INPORT = 6666;
+    // Stamp mode appends server receive and send nanoTime (2 longs) to the reply
+    static final int STAMP_BYTES = 16;
     private byte[] inbuf = new byte[1000];
     private byte[] outbuf;
     private DatagramPacket dp = new DatagramPacket(inbuf, inbuf.length);
     private DatagramSocket mysocket;
-    
+
     public UDPServer() {
+        this("text");
+    }
+
+    // mode: text (decode, print and answer with a message), raw (reflect bytes), stamp (reflect bytes + nanotimes)
+    public UDPServer(String mode) {
+        if (!isMode(mode)) throw new IllegalArgumentException("Unknown mode: " + mode);
         try {
             mysocket = new DatagramSocket(INPORT);
-            System.out.println("The server is up!");
-            while(true) {
-                mysocket.receive(dp);
-				String message = new String(dp.getData(), 0, dp.getLength());
-                String rcvd = message + ", from the host: " + dp.getAddress() +
-                        ", port: " + dp.getPort();
-                System.out.println(rcvd);
-                String echoString = "Message received: " + rcvd;
-				outbuf = echoString.getBytes();
-                DatagramPacket echo = new DatagramPacket(outbuf, outbuf.length, dp.getAddress(), dp.getPort());
-                mysocket.send(echo);
+            System.out.println("The server is up! (mode: " + mode + ")");
+            switch (mode) {
+                case "raw": rawLoop(); break;
+                case "stamp": stampLoop(); break;
+                case "text": textLoop(); break;
             }
         } catch(SocketException e) {
             System.err.println("Unable to open the socket!");
@@ -34,9 +37,60 @@ public class UDPServer {
             e.printStackTrace();
         }
     }
-    
+
+    // Original human-readable echo
+    private void textLoop() throws IOException {
+        while(true) {
+            mysocket.receive(dp);
+            String message = new String(dp.getData(), 0, dp.getLength());
+            String rcvd = message + ", from the host: " + dp.getAddress() +
+                    ", port: " + dp.getPort();
+            System.out.println(rcvd);
+            String echoString = "Message received: " + rcvd;
+            outbuf = echoString.getBytes();
+            DatagramPacket echo = new DatagramPacket(outbuf, outbuf.length, dp.getAddress(), dp.getPort());
+            mysocket.send(echo);
+        }
+    }
+
+    // Reflect the received packet in place: no decoding, no logging, no allocation
+    private void rawLoop() throws IOException {
+        while(true) {
+            // receive() shrinks the length to the datagram size, so restore full capacity
+            dp.setLength(inbuf.length);
+            mysocket.receive(dp);
+            // Source address is already set on dp, so it goes straight back to the sender
+            mysocket.send(dp);
+        }
+    }
+
+    // Reflect in place and append receive/send nanotimes so the client can split RTT into network and server time
+    private void stampLoop() throws IOException {
+        ByteBuffer stamps = ByteBuffer.wrap(inbuf);
+        while(true) {
+            // Keep room at the end of the buffer for the stamps
+            dp.setLength(inbuf.length - STAMP_BYTES);
+            mysocket.receive(dp);
+            long rx = System.nanoTime();
+            int len = dp.getLength();
+            stamps.putLong(len, rx);
+            stamps.putLong(len + 8, System.nanoTime());
+            dp.setLength(len + STAMP_BYTES);
+            mysocket.send(dp);
+        }
+    }
+
+    static boolean isMode(String mode) {
+        return mode.equals("text") || mode.equals("raw") || mode.equals("stamp");
+    }
+
     public static void main(String[] args) {
 		// Here we start the server - object constructor
-        new UDPServer();
-    }   
-}
\ No newline at end of file
+        String mode = args.length > 0 ? args[0] : "text";
+        if (!isMode(mode)) {
+            System.err.println("Usage: java base_echo.UDPServer [text|raw|stamp]");
+            System.exit(1);
+        }
+        new UDPServer(mode);
+    }
+}
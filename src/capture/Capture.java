@@ -0,0 +1,73 @@
+package capture;
+
+import java.io.*;
+import java.net.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Capture file format shared by the recorder and the replay tool.
+ * Layout: magic "UCAP", version byte, then per datagram:
+ * direction (byte), nanos since capture start (long), address length (byte), address bytes,
+ * peer port (unsigned short), payload length (unsigned short), payload.
+ */
+public class Capture {
+    static final int MAGIC = 0x55434150; // "UCAP"
+    static final int VERSION = 1;
+
+    public static final byte IN = 0;  // datagram received by the server from peer
+    public static final byte OUT = 1; // datagram sent by the server to peer
+
+    /** One captured datagram. */
+    public static class Record {
+        public final byte dir;
+        public final long nanos;
+        public final InetSocketAddress peer;
+        public final byte[] data;
+
+        Record(byte dir, long nanos, InetSocketAddress peer, byte[] data) {
+            this.dir = dir; this.nanos = nanos; this.peer = peer; this.data = data;
+        }
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    static void write(DataOutputStream out, Record r) throws IOException {
+        byte[] addr = r.peer.getAddress().getAddress();
+        out.writeByte(r.dir);
+        out.writeLong(r.nanos);
+        out.writeByte(addr.length);
+        out.write(addr);
+        out.writeShort(r.peer.getPort());
+        out.writeShort(r.data.length);
+        out.write(r.data);
+    }
+
+    /** Read a whole capture file into memory (replay needs random access to it anyway). */
+    public static List<Record> readAll(String path) throws IOException {
+        List<Record> records = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a capture file: " + path);
+            int version = in.readUnsignedByte();
+            if (version != VERSION) throw new IOException("unsupported capture version " + version);
+
+            while (true) {
+                int dir = in.read();
+                if (dir < 0) break; // clean end of file
+                long nanos = in.readLong();
+                byte[] addr = new byte[in.readUnsignedByte()];
+                in.readFully(addr);
+                int port = in.readUnsignedShort();
+                byte[] data = new byte[in.readUnsignedShort()];
+                in.readFully(data);
+                records.add(new Record((byte) dir, nanos, new InetSocketAddress(InetAddress.getByAddress(addr), port), data));
+            }
+        } catch (EOFException eof) {
+            // Truncated tail (server killed mid-write) – keep what was complete
+        }
+        return records;
+    }
+}
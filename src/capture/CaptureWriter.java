@@ -0,0 +1,142 @@
+package capture;
+
+import java.io.*;
+import java.net.*;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/** Traffic recorder – the server loop only copies and enqueues, a background thread writes the file. */
+public class CaptureWriter implements Closeable {
+    private static final int QUEUE_SIZE = 65_536;
+    private static final long CLOSE_TIMEOUT_MS = 5000;
+    private static final Capture.Record STOP = new Capture.Record(Capture.IN, 0, new InetSocketAddress(0), new byte[0]);
+
+    private final BlockingQueue<Capture.Record> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final DataOutputStream out; // used by the writer thread only
+    private final Thread writer;
+    private final long start = System.nanoTime();
+    private final String who;
+    // Enqueuers share the read lock; closing takes the write lock so no record can slip in after STOP
+    private final ReadWriteLock gate = new ReentrantReadWriteLock();
+    private boolean closed; // guarded by gate
+    private volatile long written;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public CaptureWriter(String path, String who) throws IOException {
+        this.who = who;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+        Capture.writeHeader(out);
+
+        // Writer thread – drains the queue until the STOP marker arrives, then closes the file
+        writer = new Thread(this::drain, "capture-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Start capturing if the arguments contain --capture=&lt;file&gt;, otherwise return null.
+     * The file is flushed and closed on JVM shutdown.
+     */
+    public static CaptureWriter fromArgs(String[] args, String who) {
+        return fromArgs(args, who, true);
+    }
+
+    /**
+     * Same as {@link #fromArgs(String[], String)}; with closeOnShutdown=false no shutdown hook is
+     * registered and the caller must close the writer itself (e.g. after its own shutdown messages).
+     */
+    public static CaptureWriter fromArgs(String[] args, String who, boolean closeOnShutdown) {
+        for (String a : args) {
+            if (!a.startsWith("--capture=")) continue;
+            String path = a.substring("--capture=".length());
+            try {
+                CaptureWriter cw = new CaptureWriter(path, who);
+                if (closeOnShutdown) Runtime.getRuntime().addShutdownHook(new Thread(cw::close));
+                System.out.println(who + " Capturing traffic to " + path);
+                return cw;
+            } catch (IOException e) {
+                System.err.println(who + " Unable to open capture file " + path + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        return null;
+    }
+
+    /** Record a datagram the server just received. */
+    public void in(DatagramPacket dp) {
+        enqueue(Capture.IN, (InetSocketAddress) dp.getSocketAddress(), dp.getData(), dp.getOffset(), dp.getLength());
+    }
+
+    /** Record a received datagram whose payload was rewritten (e.g. trace trailer removed). */
+    public void in(byte[] data, int len, SocketAddress from) {
+        enqueue(Capture.IN, (InetSocketAddress) from, data, 0, len);
+    }
+
+    /** Record a datagram the server just sent. */
+    public void out(byte[] data, int len, SocketAddress to) {
+        enqueue(Capture.OUT, (InetSocketAddress) to, data, 0, len);
+    }
+
+    // Never blocks the server loop: when the writer falls behind, records are dropped and counted
+    private void enqueue(byte dir, InetSocketAddress peer, byte[] data, int off, int len) {
+        Capture.Record r = new Capture.Record(dir, System.nanoTime() - start, peer, Arrays.copyOfRange(data, off, off + len));
+        gate.readLock().lock();
+        try {
+            if (closed) return;
+            if (!queue.offer(r)) dropped.incrementAndGet();
+        } finally {
+            gate.readLock().unlock();
+        }
+    }
+
+    // Refuse further records; returns false if already closed
+    private boolean shut() {
+        gate.writeLock().lock();
+        try {
+            if (closed) return false;
+            closed = true;
+            return true;
+        } finally {
+            gate.writeLock().unlock();
+        }
+    }
+
+    private void drain() {
+        try (out) {
+            while (true) {
+                Capture.Record r = queue.take();
+                if (r == STOP) break;
+                Capture.write(out, r);
+                written++;
+                // Flush when idle so a killed server still leaves a usable file
+                if (queue.isEmpty()) out.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            // Stop accepting records – nobody is left to write them, so count what is still queued as dropped
+            shut();
+            dropped.addAndGet(queue.size());
+            queue.clear();
+            System.err.println(who + " Capture writer stopped: " + e.getMessage());
+        }
+    }
+
+    /** Stop accepting records, let the writer write out everything queued and close the file. */
+    @Override
+    public synchronized void close() {
+        if (!shut() && !writer.isAlive()) return;
+        try {
+            // Every accepted record is queued by now, so STOP is the last entry the writer sees.
+            // Bounded wait: a full queue behind a stuck writer must not hang shutdown
+            if (writer.isAlive() && queue.offer(STOP, CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                writer.join(CLOSE_TIMEOUT_MS);
+            }
+        } catch (InterruptedException ignored) {}
+        if (writer.isAlive()) System.err.println(who + " Capture writer did not finish in time, file may be incomplete");
+        System.out.println(who + " Capture closed: " + written + " datagrams written, " + dropped.get() + " dropped");
+    }
+}
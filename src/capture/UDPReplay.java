@@ -0,0 +1,232 @@
+package capture;
+
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/** Replay tool – re-sends a capture against a server, checks responses and reports throughput and latency. */
+public class UDPReplay {
+    private static final int BUF = 2048;
+    private static final int POLL_MS = 100;
+    // How far a response may be matched ahead of the oldest pending one (bounds the scan on a changed server)
+    private static final int MAX_SKIP = 1024;
+
+    /** Response the server is expected to send on one replay socket. */
+    private static class Expected {
+        final byte[] data;
+        final int cause; // index of the inbound datagram that preceded it from the same peer
+        Expected(byte[] data, int cause) { this.data = data; this.cause = cause; }
+    }
+
+    /** Per-socket receive results, merged after the run. */
+    private static class Result {
+        int received, matched, mismatched, extra;
+        long lastRx;
+        long[] latency = new long[16];
+        int nLat;
+        final List<String> diffs = new ArrayList<>();
+
+        void addLatency(long ns) {
+            if (nLat == latency.length) latency = Arrays.copyOf(latency, nLat * 2);
+            latency[nLat++] = ns;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("""
+                Usage: java capture.UDPReplay <capture-file> <host> <port> [options]
+                  --speed=<factor>|max   replay at original speed (1), multiplied, or as fast as possible
+                  --sockets=<n>          replay from n sockets (default: one per original source);
+                                         fewer than sources: sources share sockets round-robin,
+                                         more than sources: requests are spread round-robin
+                  --wait=<ms>            how long to wait for trailing responses (default 1000)
+                  --ignore-after=<text>  compare responses only up to this marker (repeatable)
+                """);
+            System.exit(1);
+        }
+
+        // Parse arguments
+        String path = args[0];
+        InetSocketAddress server = new InetSocketAddress(args[1], Integer.parseInt(args[2]));
+        double speed = 1;
+        int socketLimit = 0;
+        long waitMs = 1000;
+        List<String> markers = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) {
+            String a = args[i];
+            if (a.startsWith("--speed=")) {
+                String v = a.substring("--speed=".length());
+                speed = v.equalsIgnoreCase("max") ? 0 : Double.parseDouble(v);
+            } else if (a.startsWith("--sockets=")) socketLimit = Integer.parseInt(a.substring("--sockets=".length()));
+            else if (a.startsWith("--wait=")) waitMs = Long.parseLong(a.substring("--wait=".length()));
+            else if (a.startsWith("--ignore-after=")) markers.add(a.substring("--ignore-after=".length()));
+            else throw new IllegalArgumentException("unknown option " + a);
+        }
+
+        // Load capture and count original sources
+        List<Capture.Record> records = Capture.readAll(path);
+        Map<InetSocketAddress, Integer> sourceSocket = new HashMap<>();
+        for (Capture.Record r : records) {
+            if (r.dir == Capture.IN) sourceSocket.putIfAbsent(r.peer, sourceSocket.size());
+        }
+        int sources = sourceSocket.size();
+        int nSockets = (socketLimit > 0) ? socketLimit : sources;
+        // More sockets than sources: spread individual requests (suits request/response servers)
+        boolean perRequest = nSockets > sources;
+
+        // Split into requests to send and responses to expect on each socket
+        List<Capture.Record> requests = new ArrayList<>();
+        List<Integer> requestSocket = new ArrayList<>();
+        Map<InetSocketAddress, Integer> lastRequest = new HashMap<>();
+        List<List<Expected>> expected = new ArrayList<>();
+        for (int s = 0; s < nSockets; s++) expected.add(new ArrayList<>());
+
+        for (Capture.Record r : records) {
+            if (r.dir == Capture.IN) {
+                int s = perRequest ? requests.size() % nSockets : sourceSocket.get(r.peer) % nSockets;
+                lastRequest.put(r.peer, requests.size());
+                requests.add(r);
+                requestSocket.add(s);
+            } else {
+                // Expect the response on the socket that sent the request preceding it from the same peer
+                Integer cause = lastRequest.get(r.peer);
+                if (cause == null) continue; // sent to a peer that never spoke first – cannot be reproduced
+                expected.get(requestSocket.get(cause)).add(new Expected(r.data, cause));
+            }
+        }
+        if (requests.isEmpty()) {
+            System.out.println("[REPLAY] No inbound datagrams in " + path);
+            return;
+        }
+        System.out.println("[REPLAY] " + requests.size() + " requests from " + sources + " sources over "
+                + nSockets + " sockets" + (perRequest ? " (per request)" : "") + " -> " + server + " at " + (speed == 0 ? "max" : speed + "x") + " speed");
+
+        // Open replay sockets and start one receiver per socket
+        DatagramSocket[] socks = new DatagramSocket[expected.size()];
+        Result[] results = new Result[socks.length];
+        Thread[] receivers = new Thread[socks.length];
+        AtomicLongArray sentAt = new AtomicLongArray(requests.size());
+        AtomicBoolean done = new AtomicBoolean();
+        for (int s = 0; s < socks.length; s++) {
+            socks[s] = new DatagramSocket();
+            socks[s].setSoTimeout(POLL_MS);
+            results[s] = new Result();
+            int idx = s;
+            receivers[s] = new Thread(() -> receive(socks[idx], expected.get(idx), sentAt, markers, results[idx], done));
+            receivers[s].start();
+        }
+
+        // Send loop – keep original inter-arrival times scaled by speed (0 = no pacing)
+        long first = requests.get(0).nanos;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < requests.size(); i++) {
+            Capture.Record r = requests.get(i);
+            if (speed > 0) {
+                long due = t0 + (long) ((r.nanos - first) / speed);
+                long now;
+                while ((now = System.nanoTime()) < due) LockSupport.parkNanos(due - now);
+            }
+            sentAt.set(i, System.nanoTime());
+            socks[requestSocket.get(i)].send(new DatagramPacket(r.data, r.data.length, server));
+        }
+        long sendNs = System.nanoTime() - t0;
+
+        // Let trailing responses arrive, then stop receivers
+        Thread.sleep(waitMs);
+        done.set(true);
+        for (Thread t : receivers) t.join();
+        for (DatagramSocket s : socks) s.close();
+
+        report(requests.size(), expected, results, t0, sendNs);
+    }
+
+    /**
+     * Receive loop for one socket – matches each response against the pending expected ones in order,
+     * skipping ahead over responses that never arrived (they are reported as missing).
+     */
+    private static void receive(DatagramSocket sock, List<Expected> expected, AtomicLongArray sentAt,
+                                List<String> markers, Result res, AtomicBoolean done) {
+        DatagramPacket dp = new DatagramPacket(new byte[BUF], BUF);
+        int next = 0; // first expected response not yet matched or skipped
+        while (true) {
+            try {
+                dp.setLength(BUF);
+                sock.receive(dp);
+            } catch (SocketTimeoutException e) {
+                if (done.get()) return;
+                continue;
+            } catch (Exception e) {
+                return;
+            }
+            long now = System.nanoTime();
+            res.lastRx = now;
+            res.received++;
+            // Only responses to requests already sent can be pending
+            if (next >= expected.size() || sentAt.get(expected.get(next).cause) == 0) { res.extra++; continue; }
+
+            String got = normalize(new String(dp.getData(), 0, dp.getLength(), StandardCharsets.UTF_8), markers);
+            int k = -1;
+            for (int j = next; j < expected.size() && j - next < MAX_SKIP && sentAt.get(expected.get(j).cause) != 0; j++) {
+                if (got.equals(want(expected.get(j), markers))) { k = j; break; }
+            }
+            if (k >= 0) res.matched++;
+            else {
+                // Nothing pending matches – count it against the oldest pending response
+                k = next;
+                res.mismatched++;
+                if (res.diffs.size() < 5) res.diffs.add("expected \"" + want(expected.get(k), markers) + "\" got \"" + got + "\"");
+            }
+            Expected exp = expected.get(k);
+            next = k + 1;
+
+            // Latency from sending the request that triggered the matched response in the recording
+            res.addLatency(now - sentAt.get(exp.cause));
+        }
+    }
+
+    private static String want(Expected e, List<String> markers) {
+        return normalize(new String(e.data, StandardCharsets.UTF_8), markers);
+    }
+
+    // Cut volatile tails (e.g. proxy rtt, trace stamps) before comparing
+    private static String normalize(String s, List<String> markers) {
+        for (String m : markers) {
+            int at = s.indexOf(m);
+            if (at >= 0) s = s.substring(0, at);
+        }
+        return s.trim();
+    }
+
+    private static void report(int sent, List<List<Expected>> expected, Result[] results,
+                               long t0, long sendNs) {
+        int exp = 0, received = 0, matched = 0, mismatched = 0, extra = 0, nLat = 0;
+        long lastRx = t0;
+        for (List<Expected> e : expected) exp += e.size();
+        for (Result r : results) {
+            received += r.received; matched += r.matched; mismatched += r.mismatched; extra += r.extra; nLat += r.nLat;
+            lastRx = Math.max(lastRx, r.lastRx);
+        }
+        long[] lat = new long[nLat];
+        int p = 0;
+        for (Result r : results) { System.arraycopy(r.latency, 0, lat, p, r.nLat); p += r.nLat; }
+        Arrays.sort(lat);
+
+        System.out.printf("[REPLAY] sent %d in %.3f s (%.0f req/s)%n", sent, sendNs / 1e9, sent / (sendNs / 1e9));
+        double rxSec = Math.max(1e-9, (lastRx - t0) / 1e9);
+        System.out.printf("[REPLAY] received %d in %.3f s (%.0f resp/s)%n", received, rxSec, received / rxSec);
+        System.out.printf("[REPLAY] expected %d: matched %d, mismatched %d, missing %d, extra %d%n",
+                exp, matched, mismatched, Math.max(0, exp - matched - mismatched), extra);
+        if (lat.length > 0) {
+            long sum = 0;
+            for (long l : lat) sum += l;
+            System.out.printf("[REPLAY] latency min/avg/p50/p99/max = %.1f/%.1f/%.1f/%.1f/%.1f us%n",
+                    lat[0] / 1e3, sum / 1e3 / lat.length, lat[Math.max(0, (int) Math.ceil(0.50 * lat.length) - 1)] / 1e3,
+                    lat[Math.max(0, (int) Math.ceil(0.99 * lat.length) - 1)] / 1e3, lat[lat.length - 1] / 1e3);
+        }
+        for (Result r : results) for (String d : r.diffs) System.out.println("[REPLAY] mismatch: " + d);
+    }
+}
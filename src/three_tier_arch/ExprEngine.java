@@ -0,0 +1,394 @@
+package three_tier_arch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/** Expression engine – compiles arithmetic formulas into cached stack-machine plans. */
+public class ExprEngine {
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    // Plan opcodes (operand, if any, follows in the code array)
+    private static final int OP_CONST = 0, OP_VAR = 1, OP_ADD = 2, OP_SUB = 3, OP_MUL = 4,
+            OP_DIV = 5, OP_POW = 6, OP_NEG = 7, OP_CALL = 8;
+
+    // Supported functions and their arity (index = function id)
+    private static final String[] FN_NAMES = { "sqrt", "abs", "exp", "ln", "log", "sin", "cos", "tan",
+            "floor", "ceil", "round", "min", "max", "pow" };
+    private static final int[] FN_ARITY = { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 2, 2, 2 };
+
+    /** Parse/bind failure reported back to the client as an ERR reply. */
+    public static class ExprException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final String code;
+        ExprException(String code, String detail) { super(detail); this.code = code; }
+        public String reply() { return "ERR " + code + (getMessage() == null ? "" : " " + getMessage()); }
+    }
+
+    /** Compiled formula – immutable, so it can be shared by every request using the same text. */
+    public static final class Plan {
+        final int[] code;
+        final double[] consts;
+        final String[] vars;
+        final int maxStack;
+
+        private Plan(int[] code, double[] consts, String[] vars, int maxStack) {
+            this.code = code; this.consts = consts; this.vars = vars; this.maxStack = maxStack;
+        }
+
+        /** Run the plan with values bound by slot (slot order = first appearance in the formula). */
+        public double eval(double[] values) {
+            double[] st = new double[maxStack];
+            int sp = 0;
+            for (int pc = 0; pc < code.length; pc++) {
+                switch (code[pc]) {
+                    case OP_CONST: st[sp++] = consts[code[++pc]]; break;
+                    case OP_VAR:   st[sp++] = values[code[++pc]]; break;
+                    case OP_ADD:   sp--; st[sp - 1] = st[sp - 1] + st[sp]; break;
+                    case OP_SUB:   sp--; st[sp - 1] = st[sp - 1] - st[sp]; break;
+                    case OP_MUL:   sp--; st[sp - 1] = st[sp - 1] * st[sp]; break;
+                    // Same convention as REQ DIV: division by zero yields NaN
+                    case OP_DIV:   sp--; st[sp - 1] = (st[sp] == 0) ? Double.NaN : st[sp - 1] / st[sp]; break;
+                    case OP_POW:   sp--; st[sp - 1] = Math.pow(st[sp - 1], st[sp]); break;
+                    case OP_NEG:   st[sp - 1] = -st[sp - 1]; break;
+                    case OP_CALL: {
+                        int fn = code[++pc];
+                        sp -= FN_ARITY[fn];
+                        st[sp] = call(fn, st, sp);
+                        sp++;
+                        break;
+                    }
+                    default: throw new IllegalStateException("bad opcode " + code[pc]);
+                }
+            }
+            return st[0];
+        }
+    }
+
+    private final Map<String, Plan> cache;
+    private long hits, misses;
+
+    public ExprEngine(int cacheSize) {
+        // Access-ordered map evicting the least recently used plan once full
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Plan> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Evaluate an EXPR request body. Format: &lt;expression&gt; [name=value ...]
+     * Trailing name=value tokens are bindings, everything before them is the formula.
+     */
+    public String evaluate(String body) {
+        try {
+            String[] tok = body.trim().split("\\s+");
+
+            // Split trailing bindings from the expression text
+            int end = tok.length;
+            while (end > 0 && isBinding(tok[end - 1])) end--;
+            if (end == 0) throw new ExprException("BAD_EXPR", null);
+
+            StringBuilder expr = new StringBuilder();
+            for (int i = 0; i < end; i++) expr.append(i > 0 ? " " : "").append(tok[i]);
+
+            // Look up (or compile) plan, then bind variables by slot
+            Plan plan = plan(expr.toString());
+            double[] values = bind(plan, tok, end);
+            return "RES " + plan.eval(values);
+
+        } catch (ExprException ex) {
+            return ex.reply();
+        }
+    }
+
+    /** Return cached plan for the formula, compiling it on first use. */
+    public Plan plan(String expr) throws ExprException {
+        // Key is the canonical token stream, so "a+b", "a + b" and "(a+b)" share one plan
+        List<String> tokens = lex(expr);
+        String key = canonical(tokens);
+        Plan p = cache.get(key);
+        if (p != null) { hits++; return p; }
+        misses++;
+        p = new Parser(tokens).compile();
+        cache.put(key, p);
+        return p;
+    }
+
+    /** Cache statistics for logging. */
+    public String stats() {
+        return "plans=" + cache.size() + " hits=" + hits + " misses=" + misses;
+    }
+
+    /**
+     * Split formula text into tokens: numbers, lowercased identifiers and single-char operators.
+     * Whitespace only separates tokens. Redundant parentheses around the whole formula are dropped.
+     */
+    static List<String> lex(String s) throws ExprException {
+        s = s.toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>();
+        int pos = 0;
+        while (pos < s.length()) {
+            char c = s.charAt(pos);
+            int start = pos;
+            if (Character.isWhitespace(c)) {
+                pos++;
+                continue;
+            } else if (Character.isDigit(c) || c == '.') {
+                // Numeric literal with optional exponent, e.g. 1.5e-3
+                while (pos < s.length() && (Character.isDigit(s.charAt(pos)) || s.charAt(pos) == '.')) pos++;
+                if (pos < s.length() && s.charAt(pos) == 'e') {
+                    int save = pos++;
+                    if (pos < s.length() && (s.charAt(pos) == '+' || s.charAt(pos) == '-')) pos++;
+                    if (pos < s.length() && Character.isDigit(s.charAt(pos))) {
+                        while (pos < s.length() && Character.isDigit(s.charAt(pos))) pos++;
+                    } else {
+                        pos = save;
+                    }
+                }
+            } else if (Character.isLetter(c)) {
+                while (pos < s.length() && (Character.isLetterOrDigit(s.charAt(pos)) || s.charAt(pos) == '_')) pos++;
+            } else if ("+-*/^(),".indexOf(c) >= 0) {
+                pos++;
+            } else {
+                throw new ExprException("BAD_EXPR", "near " + c);
+            }
+            tokens.add(s.substring(start, pos));
+        }
+
+        // Strip "( ... )" enclosing the whole formula
+        while (tokens.size() >= 2 && tokens.get(0).equals("(") && closing(tokens, 0) == tokens.size() - 1) {
+            tokens = tokens.subList(1, tokens.size() - 1);
+        }
+        return tokens;
+    }
+
+    // Index of the ')' matching the '(' at open, or -1
+    private static int closing(List<String> tokens, int open) {
+        int level = 0;
+        for (int i = open; i < tokens.size(); i++) {
+            if (tokens.get(i).equals("(")) level++;
+            else if (tokens.get(i).equals(")") && --level == 0) return i;
+        }
+        return -1;
+    }
+
+    /** Cache key: tokens without whitespace, except a space where two operands would otherwise merge. */
+    static String canonical(List<String> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (i > 0 && isOperand(tokens.get(i - 1)) && isOperand(tokens.get(i))) sb.append(' ');
+            sb.append(tokens.get(i));
+        }
+        return sb.toString();
+    }
+
+    private static boolean isOperand(String token) {
+        return Character.isLetterOrDigit(token.charAt(0)) || token.charAt(0) == '.';
+    }
+
+    // Binding token: identifier=value
+    private static boolean isBinding(String t) {
+        int eq = t.indexOf('=');
+        return eq > 0 && eq < t.length() - 1 && Character.isLetter(t.charAt(0));
+    }
+
+    // Map name=value tokens onto the plan's variable slots
+    private static double[] bind(Plan plan, String[] tok, int from) throws ExprException {
+        double[] values = new double[plan.vars.length];
+        boolean[] bound = new boolean[plan.vars.length];
+        for (int i = from; i < tok.length; i++) {
+            int eq = tok[i].indexOf('=');
+            String name = tok[i].substring(0, eq).toLowerCase(Locale.ROOT);
+            for (int s = 0; s < plan.vars.length; s++) {
+                if (!plan.vars[s].equals(name)) continue;
+                try {
+                    values[s] = Double.parseDouble(tok[i].substring(eq + 1));
+                } catch (NumberFormatException nfe) {
+                    throw new ExprException("BAD_VALUE", name);
+                }
+                bound[s] = true;
+            }
+        }
+        for (int s = 0; s < bound.length; s++) {
+            if (!bound[s]) throw new ExprException("UNBOUND_VAR", plan.vars[s]);
+        }
+        return values;
+    }
+
+    private static double call(int fn, double[] st, int at) {
+        double x = st[at];
+        switch (fn) {
+            case 0: return Math.sqrt(x);
+            case 1: return Math.abs(x);
+            case 2: return Math.exp(x);
+            case 3: return Math.log(x);
+            case 4: return Math.log10(x);
+            case 5: return Math.sin(x);
+            case 6: return Math.cos(x);
+            case 7: return Math.tan(x);
+            case 8: return Math.floor(x);
+            case 9: return Math.ceil(x);
+            // Half-up rounding; NaN, infinities and |x| >= 2^52 (already integral) pass through
+            case 10: return (Double.isNaN(x) || Math.abs(x) >= 0x1p52) ? x : Math.round(x);
+            case 11: return Math.min(x, st[at + 1]);
+            case 12: return Math.max(x, st[at + 1]);
+            case 13: return Math.pow(x, st[at + 1]);
+            default: throw new IllegalStateException("bad function " + fn);
+        }
+    }
+
+    /**
+     * Recursive-descent parser over lexed tokens, emitting postfix code. Grammar:
+     * expr := term (('+'|'-') term)* ; term := unary (('*'|'/') unary)* ;
+     * unary := '-' unary | power ; power := atom ('^' unary)? ;
+     * atom := number | name | name '(' expr (',' expr)* ')' | '(' expr ')'
+     */
+    private static final class Parser {
+        private final List<String> t;
+        private int pos, depth, maxDepth;
+        private final List<Integer> code = new ArrayList<>();
+        private final List<Double> consts = new ArrayList<>();
+        private final List<String> vars = new ArrayList<>();
+
+        Parser(List<String> tokens) { this.t = tokens; }
+
+        Plan compile() throws ExprException {
+            if (t.isEmpty()) throw new ExprException("BAD_EXPR", null);
+            expr();
+            // Leftover input, e.g. two adjacent operands "1 2"
+            if (pos != t.size()) throw new ExprException("BAD_EXPR", "near " + t.get(pos));
+
+            int[] c = new int[code.size()];
+            for (int i = 0; i < c.length; i++) c[i] = code.get(i);
+            double[] k = new double[consts.size()];
+            for (int i = 0; i < k.length; i++) k[i] = consts.get(i);
+            return new Plan(c, k, vars.toArray(new String[0]), Math.max(1, maxDepth));
+        }
+
+        private void expr() throws ExprException {
+            term();
+            while (at("+") || at("-")) {
+                String op = t.get(pos++);
+                term();
+                emit(op.equals("+") ? OP_ADD : OP_SUB, -1);
+            }
+        }
+
+        private void term() throws ExprException {
+            unary();
+            while (at("*") || at("/")) {
+                String op = t.get(pos++);
+                unary();
+                emit(op.equals("*") ? OP_MUL : OP_DIV, -1);
+            }
+        }
+
+        private void unary() throws ExprException {
+            if (at("-")) {
+                pos++;
+                unary();
+                emit(OP_NEG, 0);
+            } else if (at("+")) {
+                pos++;
+                unary();
+            } else {
+                power();
+            }
+        }
+
+        private void power() throws ExprException {
+            atom();
+            if (at("^")) {
+                pos++;
+                unary(); // right-associative: a^b^c = a^(b^c)
+                emit(OP_POW, -1);
+            }
+        }
+
+        private void atom() throws ExprException {
+            if (pos >= t.size()) throw new ExprException("BAD_EXPR", "unexpected end");
+            String tok = t.get(pos);
+            char c = tok.charAt(0);
+
+            // Parenthesized sub-expression
+            if (c == '(') {
+                pos++;
+                expr();
+                expect(")");
+                return;
+            }
+
+            // Numeric literal
+            if (Character.isDigit(c) || c == '.') {
+                try {
+                    consts.add(Double.parseDouble(tok));
+                } catch (NumberFormatException nfe) {
+                    throw new ExprException("BAD_EXPR", "near " + tok);
+                }
+                pos++;
+                emitOperand(OP_CONST, consts.size() - 1, 1);
+                return;
+            }
+
+            // Identifier: function call or variable
+            if (Character.isLetter(c)) {
+                pos++;
+                if (at("(")) {
+                    int fn = function(tok);
+                    pos++;
+                    int argc = 0;
+                    if (!at(")")) {
+                        expr(); argc++;
+                        while (at(",")) { pos++; expr(); argc++; }
+                    }
+                    expect(")");
+                    if (argc != FN_ARITY[fn]) throw new ExprException("BAD_ARITY", tok);
+                    emitOperand(OP_CALL, fn, 1 - argc);
+                    return;
+                }
+
+                int slot = vars.indexOf(tok);
+                if (slot < 0) { vars.add(tok); slot = vars.size() - 1; }
+                emitOperand(OP_VAR, slot, 1);
+                return;
+            }
+
+            throw new ExprException("BAD_EXPR", "near " + tok);
+        }
+
+        private static int function(String name) throws ExprException {
+            for (int i = 0; i < FN_NAMES.length; i++) {
+                if (FN_NAMES[i].equals(name)) return i;
+            }
+            throw new ExprException("BAD_FUNC", name);
+        }
+
+        // Test the next token without consuming it
+        private boolean at(String s) {
+            return pos < t.size() && t.get(pos).equals(s);
+        }
+
+        private void expect(String s) throws ExprException {
+            if (!at(s)) throw new ExprException("BAD_EXPR", "expected " + s);
+            pos++;
+        }
+
+        // Append opcode and track stack depth (delta = net stack change)
+        private void emit(int op, int delta) {
+            code.add(op);
+            depth += delta;
+        }
+
+        private void emitOperand(int op, int operand, int delta) {
+            code.add(op);
+            code.add(operand);
+            depth += delta;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+    }
+}
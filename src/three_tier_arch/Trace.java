@@ -0,0 +1,256 @@
+package three_tier_arch;
+
+import java.io.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * In-band trace context – a trace ID plus System.nanoTime hop stamps appended to a message.
+ * Wire form: "&lt;body&gt; ~T &lt;hex id&gt; &lt;first stamp&gt;,&lt;delta&gt;,&lt;delta&gt;..." where a
+ * skipped hop (e.g. the target legs of a request the proxy timed out on) is written as "-".
+ * Stamps from different processes are comparable only on the same host (shared monotonic clock).
+ */
+public class Trace {
+    public static final String MARK = " ~T ";
+
+    // Hop stamps in path order – each process appends the ones it owns
+    public static final String[] HOPS = { "client-tx", "proxy-rx", "proxy-fwd", "target-rx",
+            "target-tx", "proxy-back", "proxy-tx", "client-rx" };
+
+    // Hop indexes stamped out of sequence
+    public static final int PROXY_TX = 6, CLIENT_RX = 7;
+
+    // Stage i spans HOPS[i] -> HOPS[i + 1]
+    public static final String[] STAGES = { "client->proxy", "proxy in", "proxy->target", "target work",
+            "target->proxy", "proxy out", "proxy->client" };
+
+    // Stamp value of a hop the request never passed through
+    static final long MISSING = Long.MIN_VALUE;
+
+    final long id;
+    final long[] stamps = new long[HOPS.length];
+    int n;
+
+    private Trace(long id) { this.id = id; }
+
+    /** Start a new trace with a random ID (first hop stamped by the caller). */
+    public static Trace start() {
+        return new Trace(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+    }
+
+    /** Index of the trace trailer in a message, or -1 if untraced. */
+    public static int find(String msg) {
+        return msg.lastIndexOf(MARK);
+    }
+
+    /** Parse the trailer of a traced message, or null if absent or malformed. */
+    public static Trace of(String msg) {
+        int at = find(msg);
+        if (at < 0) return null;
+        try {
+            String[] p = msg.substring(at + MARK.length()).trim().split(" ");
+            if (p.length != 2) return null;
+            Trace t = new Trace(Long.parseUnsignedLong(p[0], 16));
+            long last = 0;
+            for (String s : p[1].split(",")) {
+                if (t.n == t.stamps.length) return null;
+                if (s.equals("-")) { t.stamps[t.n++] = MISSING; continue; }
+                // Deltas are relative to the last present stamp
+                last = (t.n == 0) ? Long.parseLong(s) : last + Long.parseLong(s);
+                t.stamps[t.n++] = last;
+            }
+            return t;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /** Message without its trace trailer. */
+    public static String body(String msg) {
+        int at = find(msg);
+        return (at < 0) ? msg : msg.substring(0, at);
+    }
+
+    /** Append the current time as the next hop stamp. */
+    public void stamp() {
+        stamp(System.nanoTime());
+    }
+
+    /** Append a hop stamp taken earlier (e.g. right after receive). */
+    public void stamp(long nanos) {
+        if (n < stamps.length) stamps[n++] = nanos;
+    }
+
+    /** Stamp a specific hop, marking any hops skipped before it as missing. */
+    public void stamp(int hop, long nanos) {
+        while (n < hop) stamps[n++] = MISSING;
+        if (n == hop) stamps[n++] = nanos;
+    }
+
+    /** True if every hop was stamped. */
+    public boolean complete() {
+        if (n < HOPS.length) return false;
+        for (int i = 0; i < n; i++) if (stamps[i] == MISSING) return false;
+        return true;
+    }
+
+    /** Client-tx to client-rx in nanoseconds (also for partial traces), or -1 if not finished. */
+    public long total() {
+        return (n == HOPS.length && stamps[CLIENT_RX] != MISSING) ? stamps[CLIENT_RX] - stamps[0] : -1;
+    }
+
+    /** True if both hops of stage i are stamped. */
+    public boolean hasStage(int i) {
+        return i + 1 < n && stamps[i] != MISSING && stamps[i + 1] != MISSING;
+    }
+
+    /** Body with this trace appended as trailer (first stamp absolute, rest as deltas). */
+    public String attach(String body) {
+        StringBuilder sb = new StringBuilder(body.length() + 24 + 8 * n);
+        sb.append(body).append(MARK).append(Long.toHexString(id)).append(' ');
+        long last = 0;
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(',');
+            if (stamps[i] == MISSING) { sb.append('-'); continue; }
+            sb.append(i == 0 ? stamps[0] : stamps[i] - last);
+            last = stamps[i];
+        }
+        return sb.toString();
+    }
+
+    /** Duration of stage i in nanoseconds, or -1 if not both hops are stamped. */
+    public long stage(int i) {
+        return hasStage(i) ? stamps[i + 1] - stamps[i] : -1;
+    }
+
+    public String id() {
+        return Long.toHexString(id);
+    }
+
+    /** One-line stage breakdown in microseconds. */
+    public String breakdown() {
+        StringBuilder sb = new StringBuilder(id());
+        for (int i = 0; i + 1 < n; i++) {
+            if (hasStage(i)) sb.append(' ').append(STAGES[i]).append('=').append(String.format("%.1f", stage(i) / 1e3));
+        }
+        if (total() >= 0) sb.append(" total=").append(String.format("%.1f", total() / 1e3));
+        sb.append(" us");
+        return complete() ? sb.toString() : sb.append(" (partial)").toString();
+    }
+
+    /** Per-stage latency histograms (power-of-two nanosecond buckets), plus end-to-end as the last row. */
+    public static class Stats {
+        private static final int ROWS = STAGES.length + 1;
+        private final long[][] buckets = new long[ROWS][64];
+        private final long[] count = new long[ROWS];
+        private final long[] sum = new long[ROWS];
+        private final long[] min = new long[ROWS];
+        private final long[] max = new long[ROWS];
+
+        public Stats() {
+            java.util.Arrays.fill(min, Long.MAX_VALUE);
+            java.util.Arrays.fill(max, Long.MIN_VALUE);
+        }
+
+        /** Record every stage the trace has both hops for, and end-to-end once the client received it. */
+        public synchronized void record(Trace t) {
+            for (int i = 0; i + 1 < t.n; i++) {
+                if (t.hasStage(i)) add(i, t.stage(i));
+            }
+            if (t.total() >= 0) add(STAGES.length, t.total());
+        }
+
+        private void add(int row, long d) {
+            // Negative only if hops ran on hosts with unrelated clocks – keep in min, clamp for the histogram
+            buckets[row][63 - Long.numberOfLeadingZeros(Math.max(d, 1))]++;
+            count[row]++;
+            sum[row] += d;
+            min[row] = Math.min(min[row], d);
+            max[row] = Math.max(max[row], d);
+        }
+
+        /** Table of recorded stages; percentiles are bucket upper bounds. */
+        public synchronized String summary(String who) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(who).append(" trace stages (us, p50/p99 are histogram upper bounds)\n");
+            sb.append(String.format("  %-14s %8s %10s %10s %10s %10s %10s%n", "stage", "count", "avg", "min", "p50", "p99", "max"));
+            for (int i = 0; i < ROWS; i++) {
+                if (count[i] == 0) continue;
+                String name = (i < STAGES.length) ? STAGES[i] : "end-to-end";
+                sb.append(String.format("  %-14s %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, count[i],
+                        sum[i] / 1e3 / count[i], min[i] / 1e3, percentile(i, 0.50) / 1e3,
+                        percentile(i, 0.99) / 1e3, max[i] / 1e3));
+            }
+            return sb.toString();
+        }
+
+        public synchronized boolean isEmpty() {
+            for (long c : count) if (c > 0) return false;
+            return true;
+        }
+
+        private long percentile(int stage, double q) {
+            long rank = (long) Math.ceil(q * count[stage]), seen = 0;
+            for (int b = 0; b < 64; b++) {
+                seen += buckets[stage][b];
+                if (seen >= rank) return Math.min(b == 62 ? Long.MAX_VALUE : 1L << (b + 1), max[stage]);
+            }
+            return max[stage];
+        }
+    }
+
+    /**
+     * Binary trace dump. Layout: magic "UTRC", version byte, hop count byte,
+     * then per trace: id (long), stamp count (byte), absolute stamps (long each, Long.MIN_VALUE = missing hop).
+     */
+    public static class Dump implements Closeable {
+        static final int MAGIC = 0x55545243; // "UTRC"
+        static final int VERSION = 1;
+
+        private final DataOutputStream out;
+
+        public Dump(String path) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(HOPS.length);
+            out.flush();
+        }
+
+        public synchronized void write(Trace t) throws IOException {
+            out.writeLong(t.id);
+            out.writeByte(t.n);
+            for (int i = 0; i < t.n; i++) out.writeLong(t.stamps[i]);
+            // Flush per trace so a client killed with Ctrl+C still leaves complete records
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+
+        /** Read the next trace, or null at end of file (a truncated final record is skipped). */
+        public static Trace read(DataInputStream in) throws IOException {
+            try {
+                Trace t = new Trace(in.readLong());
+                int n = in.readUnsignedByte();
+                if (n > t.stamps.length) throw new IOException("corrupt trace record (" + n + " stamps)");
+                for (int i = 0; i < n; i++) t.stamp(in.readLong());
+                return t;
+            } catch (EOFException eof) {
+                // Clean end of file or a record cut off mid-write – keep what was complete
+                return null;
+            }
+        }
+
+        /** Open a dump for reading and validate its header. */
+        public static DataInputStream open(String path) throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+            if (in.readInt() != MAGIC) throw new IOException("not a trace dump: " + path);
+            int version = in.readUnsignedByte();
+            if (version != VERSION) throw new IOException("unsupported trace dump version " + version);
+            if (in.readUnsignedByte() != HOPS.length) throw new IOException("hop layout mismatch");
+            return in;
+        }
+    }
+}
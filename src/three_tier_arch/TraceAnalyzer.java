@@ -0,0 +1,63 @@
+package three_tier_arch;
+
+import java.io.DataInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Offline analyzer – prints an exact per-stage latency breakdown of a client trace dump. */
+public class TraceAnalyzer {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java three_tier_arch.TraceAnalyzer <dump-file> [--each]");
+            System.exit(1);
+        }
+        boolean each = args.length > 1 && args[1].equals("--each");
+
+        // Collect stage durations per stage (plus end-to-end) from every trace in the dump
+        List<List<Long>> stages = new ArrayList<>();
+        for (int i = 0; i <= Trace.STAGES.length; i++) stages.add(new ArrayList<>());
+        int traces = 0, partial = 0;
+
+        try (DataInputStream in = Trace.Dump.open(args[0])) {
+            Trace t;
+            while ((t = Trace.Dump.read(in)) != null) {
+                traces++;
+                if (each) System.out.println(t.breakdown());
+                // Partial: hops skipped, e.g. the proxy timed out waiting for the target
+                if (!t.complete()) partial++;
+                for (int i = 0; i + 1 < t.n; i++) {
+                    if (t.hasStage(i)) stages.get(i).add(t.stage(i));
+                }
+                if (t.total() >= 0) stages.get(Trace.STAGES.length).add(t.total());
+            }
+        } catch (Exception e) {
+            System.err.println("[ANALYZER] ERROR: " + (e.getMessage() != null ? e.getMessage() : e));
+            System.exit(1);
+        }
+
+        // Print stage table with share of the average end-to-end time
+        System.out.println("Traces: " + traces + " (" + partial + " partial"
+                + (partial > 0 ? "; time spent in their missing hops shows only in end-to-end" : "") + ")");
+        System.out.printf("  %-14s %8s %10s %10s %10s %10s %10s %7s%n", "stage", "count", "avg us", "min us", "p50 us", "p99 us", "max us", "share");
+        double total = avg(stages.get(Trace.STAGES.length));
+        for (int i = 0; i <= Trace.STAGES.length; i++) {
+            List<Long> d = stages.get(i);
+            if (d.isEmpty()) continue;
+            long[] s = d.stream().mapToLong(Long::longValue).sorted().toArray();
+            String name = (i < Trace.STAGES.length) ? Trace.STAGES[i] : "end-to-end";
+            System.out.printf("  %-14s %8d %10.1f %10.1f %10.1f %10.1f %10.1f %6.1f%%%n", name, s.length,
+                    avg(d) / 1e3, s[0] / 1e3, pct(s, 0.50) / 1e3, pct(s, 0.99) / 1e3, s[s.length - 1] / 1e3,
+                    total > 0 ? 100 * avg(d) / total : 0.0);
+        }
+    }
+
+    private static double avg(List<Long> d) {
+        return d.stream().mapToLong(Long::longValue).average().orElse(0);
+    }
+
+    // Nearest-rank percentile of sorted values
+    private static long pct(long[] sorted, double q) {
+        return sorted[Math.max(0, (int) Math.ceil(q * sorted.length) - 1)];
+    }
+}
@@ -1,5 +1,7 @@
 package three_tier_arch;
 
+import capture.CaptureWriter;
+
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
@@ -14,10 +16,21 @@ public class UDPProxyServer {
     private static final int BUF = 2048;
     private static final int TARGET_TIMEOUT_MS = 2000;
 
+    // Stage latencies of traced requests seen by this process
+    private static final Trace.Stats TRACE_STATS = new Trace.Stats();
+
     public static void main(String[] args) {
         // Startup info
         System.out.println("[PROXY] UP on " + PROXY_PORT + " -> target " + TARGET_HOST + ":" + TARGET_PORT);
 
+        // Optional capture of client traffic (--capture=<file>)
+        CaptureWriter capture = CaptureWriter.fromArgs(args, "[PROXY]");
+
+        // Print trace stage histograms on shutdown
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!TRACE_STATS.isEmpty()) System.out.print(TRACE_STATS.summary("[PROXY]"));
+        }));
+
         // Shared input buffer for client datagrams
         byte[] buf = new byte[BUF];
 
@@ -33,22 +46,47 @@ public class UDPProxyServer {
                 // Receive request from client
                 DatagramPacket fromClient = new DatagramPacket(buf, buf.length);
                 clientSock.receive(fromClient);
+                long rxNanos = System.nanoTime();
                 String msg = new String(fromClient.getData(), 0, fromClient.getLength(), StandardCharsets.UTF_8).trim();
+
+                // Split off optional trace context and stamp proxy-rx
+                Trace trace = Trace.of(msg);
+                if (trace != null) {
+                    msg = Trace.body(msg);
+                    trace.stamp(rxNanos);
+                }
+
+                // Capture the untraced payload so a replay does not resend stale hop stamps
+                if (capture != null) {
+                    if (trace == null) capture.in(fromClient);
+                    else {
+                        byte[] plain = msg.getBytes(StandardCharsets.UTF_8);
+                        capture.in(plain, plain.length, fromClient.getSocketAddress());
+                    }
+                }
                 SocketAddress clientAddr = fromClient.getSocketAddress();
                 System.out.println("[PROXY] RX client " + clientAddr + " :: \"" + msg + "\"");
 
                 // Handle local END command (do not forward)
                 if (msg.equalsIgnoreCase("END")) {
                     String bye = "END Bye (client requested local termination)";
-                    clientSock.send(new DatagramPacket(bye.getBytes(StandardCharsets.UTF_8), bye.length(), clientAddr));
+                    byte[] outBye = bye.getBytes(StandardCharsets.UTF_8);
+                    clientSock.send(new DatagramPacket(outBye, outBye.length, clientAddr));
+                    if (capture != null) capture.out(outBye, outBye.length, clientAddr);
                     System.out.println("[PROXY] TX client " + clientAddr + " :: \"" + bye + "\"");
                     continue;
                 }
 
                 String reply;
+                Trace back = null;
                 try {
-                    // Prepare forward to target
-                    byte[] out = msg.getBytes(StandardCharsets.UTF_8);
+                    // Prepare forward to target (traced: stamp proxy-fwd and pass the context on)
+                    String fwd = msg;
+                    if (trace != null) {
+                        trace.stamp();
+                        fwd = trace.attach(msg);
+                    }
+                    byte[] out = fwd.getBytes(StandardCharsets.UTF_8);
                     InetAddress targetAddr = InetAddress.getByName(TARGET_HOST);
                     DatagramPacket toT = new DatagramPacket(out, out.length, targetAddr, TARGET_PORT);
 
@@ -60,10 +98,16 @@ public class UDPProxyServer {
                     byte[] buf2 = new byte[BUF];
                     DatagramPacket fromTarget = new DatagramPacket(buf2, buf2.length);
                     toTarget.receive(fromTarget);
+                    long backNanos = System.nanoTime();
                     long rttMs = Duration.between(t0, Instant.now()).toMillis();
 
-                    // Decode target response
+                    // Decode target response and take back the trace context (stamp proxy-back)
                     String res = new String(fromTarget.getData(), 0, fromTarget.getLength(), StandardCharsets.UTF_8).trim();
+                    if (trace != null) {
+                        back = Trace.of(res);
+                        res = Trace.body(res);
+                        if (back != null) back.stamp(backNanos);
+                    }
 
                     // Append proxy metadata
                     if (res.startsWith("RES ")) {
@@ -83,10 +127,23 @@ public class UDPProxyServer {
                     System.out.println("[PROXY] ⚠ Exception -> " + ex.getMessage());
                 }
 
-                // Send final response back to client
-                byte[] outReply = reply.getBytes(StandardCharsets.UTF_8);
+                // No context back from the target (timeout, error): return ours so the client still records it
+                if (back == null) back = trace;
+
+                // Send final response back to client (traced: stamp proxy-tx, trailer stays last)
+                String wire = reply;
+                if (back != null) {
+                    back.stamp(Trace.PROXY_TX, System.nanoTime()); // target hops, if skipped, stay missing
+                    wire = back.attach(reply);
+                }
+                byte[] outReply = wire.getBytes(StandardCharsets.UTF_8);
                 clientSock.send(new DatagramPacket(outReply, outReply.length, clientAddr));
+                if (capture != null) {
+                    byte[] plain = (back == null) ? outReply : reply.getBytes(StandardCharsets.UTF_8);
+                    capture.out(plain, plain.length, clientAddr);
+                }
                 System.out.println("[PROXY] TX client " + clientAddr + " :: \"" + reply + "\"");
+                if (back != null) TRACE_STATS.record(back);
             }
 
         } catch (Exception e) {
@@ -12,9 +12,16 @@ public class UDPRequestClient {
     private static final int BUF = 2048;
 
     public static void main(String[] args) {
-        // Resolve proxy host (default: localhost)
-        String host = (args.length > 0) ? args[0] : PROXY_HOST;
-        System.out.println("[CLIENT] Connecting to proxy " + host + ":" + PROXY_PORT);
+        // CLI arguments – optional proxy host (default: localhost), --trace, --trace-dump=<file>
+        String host = PROXY_HOST;
+        boolean tracing = false;
+        String dumpPath = null;
+        for (String a : args) {
+            if (a.equals("--trace")) tracing = true;
+            else if (a.startsWith("--trace-dump=")) { tracing = true; dumpPath = a.substring("--trace-dump=".length()); }
+            else host = a;
+        }
+        System.out.println("[CLIENT] Connecting to proxy " + host + ":" + PROXY_PORT + (tracing ? " (tracing on)" : ""));
 
         // Display available operations and usage
         System.out.println("""
@@ -24,14 +31,18 @@ public class UDPRequestClient {
               • SUB – subtraction
               • MUL – multiplication
               • DIV – division
+              • EXPR – whole formula with variables, e.g. EXPR (a+b)*c/d a=1 b=2 c=3 d=4
            
             Type commands in the format:  REQ <OPERATION> <A> <B>
+                                      or  EXPR <EXPRESSION> [NAME=VALUE ...]
             Type END to close the client.
             ------------------------------------------------------------
             """);
 
         // Init UDP socket and communication with proxy
-        try (DatagramSocket sock = new DatagramSocket()) {
+        Trace.Stats stats = new Trace.Stats();
+        try (DatagramSocket sock = new DatagramSocket();
+             Trace.Dump dump = (dumpPath != null) ? new Trace.Dump(dumpPath) : null) {
             InetAddress proxy = InetAddress.getByName(host);
             Scanner sc = new Scanner(System.in, StandardCharsets.UTF_8);
             byte[] buf = new byte[BUF];
@@ -52,18 +63,36 @@ public class UDPRequestClient {
                     break;
                 }
 
-                // Send request to proxy
-                byte[] out = line.getBytes(StandardCharsets.UTF_8);
+                // Send request to proxy (traced: start context and stamp client-tx)
+                String wire = line;
+                if (tracing) {
+                    Trace t = Trace.start();
+                    t.stamp();
+                    wire = t.attach(line);
+                }
+                byte[] out = wire.getBytes(StandardCharsets.UTF_8);
                 sock.send(new DatagramPacket(out, out.length, proxy, PROXY_PORT));
 
                 // Wait for proxy response
                 DatagramPacket dp = new DatagramPacket(buf, buf.length);
                 sock.receive(dp);
+                long rxNanos = System.nanoTime();
 
                 // Decode and print proxy response
                 String resp = new String(dp.getData(), 0, dp.getLength(), StandardCharsets.UTF_8).trim();
+                Trace trace = tracing ? Trace.of(resp) : null;
+                if (trace != null) resp = Trace.body(resp);
                 System.out.println("[CLIENT] " + resp);
+
+                // Complete the trace (stamp client-rx), aggregate and dump it – partial ones included
+                if (trace != null) {
+                    trace.stamp(Trace.CLIENT_RX, rxNanos);
+                    stats.record(trace);
+                    if (dump != null) dump.write(trace);
+                    System.out.println("[TRACE] " + trace.breakdown());
+                }
             }
+            if (!stats.isEmpty()) System.out.print(stats.summary("[CLIENT]"));
         } catch (Exception e) {
             // Global exception handler
             System.err.println("[CLIENT] ERROR: " + e.getMessage());
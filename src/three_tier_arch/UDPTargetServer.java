@@ -1,5 +1,7 @@
 package three_tier_arch;
 
+import capture.CaptureWriter;
+
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 
@@ -8,9 +10,23 @@ public class UDPTargetServer {
     public static final int TARGET_PORT = 7001;
     private static final int BUF = 2048;
 
+    // Compiled EXPR plans, shared across requests with the same formula
+    private static final ExprEngine EXPR = new ExprEngine(ExprEngine.DEFAULT_CACHE_SIZE);
+
+    // Stage latencies of traced requests seen by this process
+    private static final Trace.Stats TRACE_STATS = new Trace.Stats();
+
     public static void main(String[] args) {
         // Startup info
-        System.out.println("[TARGET] UP on " + TARGET_PORT + " (ops: ADD, SUB, MUL, DIV)");
+        System.out.println("[TARGET] UP on " + TARGET_PORT + " (ops: ADD, SUB, MUL, DIV, EXPR)");
+
+        // Optional traffic capture (--capture=<file>)
+        CaptureWriter capture = CaptureWriter.fromArgs(args, "[TARGET]");
+
+        // Print trace stage histograms on shutdown
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (!TRACE_STATS.isEmpty()) System.out.print(TRACE_STATS.summary("[TARGET]"));
+        }));
 
         // Shared input buffer
         byte[] buf = new byte[BUF];
@@ -21,19 +37,43 @@ public class UDPTargetServer {
                 // Receive request packet
                 DatagramPacket dp = new DatagramPacket(buf, buf.length);
                 socket.receive(dp);
+                long rxNanos = System.nanoTime();
 
-                // Decode client message
+                // Decode client message and split off optional trace context
                 String msg = new String(dp.getData(), 0, dp.getLength(), StandardCharsets.UTF_8).trim();
+                Trace trace = Trace.of(msg);
+                if (trace != null) msg = Trace.body(msg);
 
-                // Process and prepare response
+                // Capture the untraced payload so a replay does not resend stale hop stamps
+                if (capture != null) {
+                    if (trace == null) capture.in(dp);
+                    else {
+                        byte[] plain = msg.getBytes(StandardCharsets.UTF_8);
+                        capture.in(plain, plain.length, dp.getSocketAddress());
+                    }
+                }
+
+                // Process and prepare response (traced: stamp target-rx/target-tx and pass the context back)
                 String resp = handle(msg);
-                byte[] out = resp.getBytes(StandardCharsets.UTF_8);
+                String wire = resp;
+                if (trace != null) {
+                    trace.stamp(rxNanos);
+                    trace.stamp();
+                    wire = trace.attach(resp);
+                }
+                byte[] out = wire.getBytes(StandardCharsets.UTF_8);
 
                 // Send response back to client (proxy)
                 socket.send(new DatagramPacket(out, out.length, dp.getSocketAddress()));
+                if (capture != null) {
+                    byte[] plain = (trace == null) ? out : resp.getBytes(StandardCharsets.UTF_8);
+                    capture.out(plain, plain.length, dp.getSocketAddress());
+                }
 
                 // Log request and response
-                System.out.println("[TARGET] RX \"" + msg + "\" -> TX \"" + resp + "\" to " + dp.getSocketAddress());
+                System.out.println("[TARGET] RX \"" + msg + "\" -> TX \"" + resp + "\" to " + dp.getSocketAddress()
+                        + (isExpr(msg) ? " [plan cache " + EXPR.stats() + "]" : ""));
+                if (trace != null) TRACE_STATS.record(trace);
             }
         } catch (Exception e) {
             // Global error handler
@@ -42,9 +82,13 @@ public class UDPTargetServer {
         }
     }
 
-    /** Handle arithmetic request. Format: REQ <OPERATION> <A> <B> */
+    /** Handle arithmetic request. Format: REQ <OPERATION> <A> <B> or EXPR <EXPRESSION> [NAME=VALUE ...] */
     private static String handle(String msg) {
         try {
+            // Whole-formula request (evaluated before case folding, engine normalizes itself)
+            String head = msg.trim();
+            if (isExpr(head)) return EXPR.evaluate(head.substring(5));
+
             // Normalize case (accept lowercase commands)
             msg = msg.trim().toUpperCase();
 
@@ -76,4 +120,9 @@ public class UDPTargetServer {
             return "ERR BAD_REQUEST";
         }
     }
+
+    // EXPR request (case-insensitive keyword)
+    private static boolean isExpr(String msg) {
+        return msg.regionMatches(true, 0, "EXPR ", 0, 5);
+    }
 }
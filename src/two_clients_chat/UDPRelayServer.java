@@ -1,5 +1,7 @@
 package two_clients_chat;
 
+import capture.CaptureWriter;
+
 import java.net.*;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -33,8 +35,14 @@ public class UDPRelayServer {
     private Client c1=null,c2=null;
     private int turn=0;
     private long lastSeen1=0, lastSeen2=0;
+    private CaptureWriter capture; // optional traffic capture (--capture=<file>)
 
-    public static void main(String[] args){ new UDPRelayServer().run(); }
+    public static void main(String[] args){
+        UDPRelayServer server = new UDPRelayServer();
+        // Closed by notifyShutdown() itself, after the SERVER_SHUTDOWN notices are recorded
+        server.capture = CaptureWriter.fromArgs(args, "[SERVER]", false);
+        server.run();
+    }
 
     /** Main loop – receives datagrams, classifies and dispatches them. */
     private void run(){
@@ -51,6 +59,7 @@ public class UDPRelayServer {
                 // Receive incoming datagram
                 DatagramPacket dp = new DatagramPacket(buf, buf.length);
                 sock.receive(dp);
+                if (capture!=null) capture.in(dp);
 
                 // Extract sender and message
                 InetSocketAddress from = (InetSocketAddress) dp.getSocketAddress();
@@ -187,6 +196,7 @@ public class UDPRelayServer {
     private void send(SocketAddress to,String s) throws IOException {
         byte[] data = s.getBytes(StandardCharsets.UTF_8);
         sock.send(new DatagramPacket(data,data.length,to));
+        if (capture!=null) capture.out(data,data.length,to);
         System.out.println("[TX] "+s+" -> "+to);
     }
 
@@ -232,6 +242,7 @@ public class UDPRelayServer {
         } catch (IOException ignored) {}
         finally {
             if (sock != null && !sock.isClosed()) sock.close();
+            if (capture != null) capture.close();
             System.out.println("[SERVER] Shutdown complete");
         }
     }